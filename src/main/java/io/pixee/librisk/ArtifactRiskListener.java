@@ -0,0 +1,24 @@
+package io.pixee.librisk;
+
+import java.io.IOException;
+
+/**
+ * Receives findings as an artifact is being profiled, so callers don't have to wait for (or hold
+ * onto) the whole {@link ArtifactRiskProfile}. Each finding is reported once, just like it
+ * appears once in the profile.
+ *
+ * <p>Artifacts are identified by name, which is the path for files, and whatever the caller chose
+ * for streams.
+ */
+public interface ArtifactRiskListener {
+
+  /** Called before any findings are reported for the given artifact. */
+  default void artifactStarted(final String artifact) throws IOException {}
+
+  void riskyBehaviorFound(final BinaryBehaviorFound behavior) throws IOException;
+
+  default void classFailed(final String className) throws IOException {}
+
+  /** Called after all findings have been reported for the given artifact. */
+  default void artifactFinished(final String artifact) throws IOException {}
+}
@@ -2,6 +2,9 @@ package io.pixee.librisk;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * This is the main entrypoint which will allow callers to get the risk profile of a given library.
@@ -10,6 +13,36 @@ public interface ArtifactRiskProfiler {
 
   ArtifactRiskProfile profile(final File binary) throws IOException;
 
+  /**
+   * Profile the given library, handing each finding to the listener as soon as it's found rather
+   * than collecting them into an {@link ArtifactRiskProfile}.
+   */
+  void profile(final File binary, final ArtifactRiskListener listener) throws IOException;
+
+  /**
+   * Profile a library that's being read as a stream, like an upload, without writing it to disk
+   * first. The stream is read once, front to back, and isn't closed, nor touched again once this
+   * returns.
+   */
+  ArtifactRiskProfile profile(final InputStream binary) throws IOException;
+
+  /**
+   * Profile a library that's being read as a stream, handing each finding to the listener as soon
+   * as it's found. The name is only used to identify the artifact to the listener.
+   */
+  void profile(final InputStream binary, final String name, final ArtifactRiskListener listener)
+      throws IOException;
+
+  default ArtifactRiskProfile profile(final ReadableByteChannel binary) throws IOException {
+    return profile(Channels.newInputStream(binary));
+  }
+
+  default void profile(
+      final ReadableByteChannel binary, final String name, final ArtifactRiskListener listener)
+      throws IOException {
+    profile(Channels.newInputStream(binary), name, listener);
+  }
+
   static ArtifactRiskProfiler createDefault() {
     return new DefaultArtifactRiskProfiler();
   }
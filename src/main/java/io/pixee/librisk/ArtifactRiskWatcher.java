@@ -0,0 +1,49 @@
+package io.pixee.librisk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps the risk profiles of the jars in a directory up to date as they're added, replaced or
+ * removed, like in an artifact staging directory. Changes are picked up from the file system's
+ * watch service rather than by polling, and each changed jar is profiled again on a background
+ * thread once it's stopped changing for a moment, so half-written jars aren't profiled.
+ */
+public interface ArtifactRiskWatcher extends Closeable {
+
+  /** A live, read-only view of the latest profile of each jar in the directory. */
+  Map<Path, ArtifactRiskProfile> profiles();
+
+  /**
+   * Be notified whenever a jar's profile changes from now on. To hear about the jars that were
+   * already in the directory too, pass the subscriber to {@link #watch} instead.
+   */
+  void subscribe(final Subscriber subscriber);
+
+  interface Subscriber {
+
+    /** Called with the artifact's new profile, or empty if the artifact was removed. */
+    void profileChanged(final Path artifact, final Optional<ArtifactRiskProfile> profile);
+  }
+
+  /**
+   * Start watching the given directory, profiling the jars already there in the background. The
+   * subscribers are notified of every change, starting with the profiles of those existing jars.
+   */
+  static ArtifactRiskWatcher watch(
+      final Path directory, final ArtifactRiskProfiler profiler, final Subscriber... subscribers)
+      throws IOException {
+    return new DefaultArtifactRiskWatcher(directory, profiler, List.of(subscribers));
+  }
+
+  /**
+   * Stop watching, and wait for any profiling in progress to finish, so subscribers won't be
+   * notified again once this returns.
+   */
+  @Override
+  void close() throws IOException;
+}
@@ -0,0 +1,561 @@
+package io.pixee.librisk;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+/**
+ * A hash of a class's structure and bytecode that doesn't change when the class is relocated, like
+ * when a library is shaded into another jar. Every non-JDK type name is reduced to its simple name
+ * before being hashed, so {@code com/fasterxml/jackson/core/JsonParser} and {@code
+ * com/foo/shaded/jackson/core/JsonParser} contribute the same thing. JDK type names, which shading
+ * never touches, are hashed as-is.
+ *
+ * <p>Two classes with the same fingerprint have the same findings, apart from the jar entry they're
+ * in, short of a SHA-256 collision. To keep that true, what's hashed is an unambiguous encoding of
+ * the class, every invocation that matches one of the given predicates is hashed with the
+ * behaviors it matched and its full owner and descriptor, and so is the full descriptor of any
+ * method containing one. A relocated class that invokes something risky on a
+ * relocated type therefore gets a different fingerprint from the original, and is analyzed afresh.
+ *
+ * <p>Since matching the predicates is most of the work of finding a class's risky behaviors, the
+ * findings are collected in the same pass over the class file, which is streamed without building
+ * a tree. A class we haven't seen before therefore costs one pass, not a fingerprinting pass and
+ * then an analysis.
+ */
+record ClassFingerprint(long high, long low) {
+
+  /**
+   * What a single pass over a class turns up. The findings aren't built until they're asked for,
+   * since we don't need them when we've already seen a class with the same fingerprint.
+   */
+  static final class Analysis {
+
+    private final ClassFingerprint fingerprint;
+    private final String jarEntryPath;
+    private final List<RiskyMethod> riskyMethods;
+
+    private Analysis(
+        final ClassFingerprint fingerprint,
+        final String jarEntryPath,
+        final List<RiskyMethod> riskyMethods) {
+      this.fingerprint = fingerprint;
+      this.jarEntryPath = jarEntryPath;
+      this.riskyMethods = riskyMethods;
+    }
+
+    ClassFingerprint fingerprint() {
+      return fingerprint;
+    }
+
+    List<BinaryBehaviorFound> riskyBehaviors() {
+      // an invocation can match several predicates for the same behavior
+      Set<BinaryBehaviorFound> riskyBehaviors = new LinkedHashSet<>();
+      for (RiskyMethod method : riskyMethods) {
+        MethodDescriptor containingMethod =
+            MethodDescriptor.of(method.name(), method.descriptor(), method.firstLine());
+        for (RiskyInvocation invocation : method.invocations()) {
+          riskyBehaviors.add(
+              new BinaryBehaviorFound(
+                  invocation.behavior(),
+                  new BinaryLocation(jarEntryPath, containingMethod, invocation.lineNumber()),
+                  invocation.methodInvocation()));
+        }
+      }
+      return List.copyOf(riskyBehaviors);
+    }
+  }
+
+  private record RiskyMethod(
+      String name,
+      String descriptor,
+      Optional<Integer> firstLine,
+      List<RiskyInvocation> invocations) {}
+
+  private record RiskyInvocation(
+      Behavior behavior, Optional<Integer> lineNumber, MethodInvocation methodInvocation) {}
+
+  static Analysis analyze(
+      final ClassReader classReader,
+      final String jarEntryPath,
+      final Set<InvocationPredicate> riskyBehaviorPredicates) {
+    Analyzer analyzer = new Analyzer(riskyBehaviorPredicates);
+    classReader.accept(analyzer, ClassReader.SKIP_FRAMES);
+    return new Analysis(analyzer.fingerprint(), jarEntryPath, analyzer.riskyMethods);
+  }
+
+  /** Whether the internal name starting at the given offset is of a JDK type. */
+  private static boolean isJdkType(final String value, final int from) {
+    return value.startsWith("java/", from)
+        || value.startsWith("javax/", from)
+        || value.startsWith("jdk/", from)
+        || value.startsWith("sun/", from);
+  }
+
+  /**
+   * Feeds everything that could affect our findings into the digest, with names normalized, and
+   * collects the findings along the way. Everything is staged in a buffer, so the digest is fed in
+   * large blocks rather than a byte at a time.
+   *
+   * <p>The input to the digest has to be an unambiguous encoding of what we saw, or someone could
+   * craft a harmless class whose input matches a risky one, so the risky one would be given the
+   * harmless one's findings. So every record starts with its own tag, every string and list starts
+   * with its length, and everything else has a fixed size.
+   */
+  private static final class Analyzer extends ClassVisitor {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final char CLASS = 'C';
+    private static final char FIELD = 'F';
+    private static final char METHOD = 'M';
+    private static final char RISKY_METHOD = 'R';
+    private static final char METHOD_END = 'E';
+    private static final char INSN = 'i';
+    private static final char INT_INSN = 'n';
+    private static final char VAR_INSN = 'v';
+    private static final char TYPE_INSN = 't';
+    private static final char FIELD_INSN = 'f';
+    private static final char METHOD_INSN = 'm';
+    private static final char MATCHED_BEHAVIOR = '!';
+    private static final char EXACT_NAMES = '=';
+    private static final char NORMALIZED_NAMES = '~';
+    private static final char INVOKE_DYNAMIC_INSN = 'y';
+    private static final char JUMP_INSN = 'j';
+    private static final char LABEL = ':';
+    private static final char LDC_INSN = 'l';
+    private static final char IINC_INSN = '+';
+    private static final char TABLE_SWITCH_INSN = 's';
+    private static final char LOOKUP_SWITCH_INSN = 'k';
+    private static final char MULTI_ANEW_ARRAY_INSN = 'a';
+    private static final char LINE_NUMBER = '#';
+    private static final char STRING_CONSTANT = '"';
+    private static final char TYPE_CONSTANT = 'T';
+    private static final char HANDLE_CONSTANT = 'H';
+    private static final char INTEGER_CONSTANT = 'I';
+    private static final char LONG_CONSTANT = 'J';
+    private static final char FLOAT_CONSTANT = 'G';
+    private static final char DOUBLE_CONSTANT = 'D';
+    private static final char DYNAMIC_CONSTANT = 'K';
+    private static final char OTHER_CONSTANT = '?';
+
+    private final Set<InvocationPredicate> riskyBehaviorPredicates;
+    private final List<RiskyMethod> riskyMethods;
+    private final MessageDigest digest;
+    private final byte[] buffer;
+    private int position;
+
+    /** Reused to normalize descriptors, so each can be hashed as a single string. */
+    private final StringBuilder normalizedDescriptor;
+
+    private Analyzer(final Set<InvocationPredicate> riskyBehaviorPredicates) {
+      super(Opcodes.ASM9);
+      this.riskyBehaviorPredicates = riskyBehaviorPredicates;
+      this.riskyMethods = new ArrayList<>();
+      this.buffer = new byte[BUFFER_SIZE];
+      this.normalizedDescriptor = new StringBuilder();
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 is required of every JVM", e);
+      }
+    }
+
+    private ClassFingerprint fingerprint() {
+      digest.update(buffer, 0, position);
+      ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+      return new ClassFingerprint(hash.getLong(), hash.getLong());
+    }
+
+    @Override
+    public void visit(
+        final int version,
+        final int access,
+        final String name,
+        final String signature,
+        final String superName,
+        final String[] interfaces) {
+      updateTag(CLASS);
+      updateInt(access);
+      updateInternalName(name);
+      updateInt(superName != null ? 1 : 0);
+      if (superName != null) {
+        updateInternalName(superName);
+      }
+      updateInt(interfaces != null ? interfaces.length : 0);
+      if (interfaces != null) {
+        for (String anInterface : interfaces) {
+          updateInternalName(anInterface);
+        }
+      }
+    }
+
+    @Override
+    public FieldVisitor visitField(
+        final int access,
+        final String name,
+        final String descriptor,
+        final String signature,
+        final Object value) {
+      updateTag(FIELD);
+      updateInt(access);
+      updateString(name);
+      updateDescriptor(descriptor);
+      return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+        final int access,
+        final String name,
+        final String descriptor,
+        final String signature,
+        final String[] exceptions) {
+      updateTag(METHOD);
+      updateInt(access);
+      updateString(name);
+      updateDescriptor(descriptor);
+      return new MethodAnalyzer(name, descriptor);
+    }
+
+    private final class MethodAnalyzer extends MethodVisitor {
+
+      private final String name;
+      private final String descriptor;
+      private final List<RiskyInvocation> riskyInvocations;
+      private Integer firstLine;
+      private Integer currentLine;
+      private int labelCount;
+
+      private MethodAnalyzer(final String name, final String descriptor) {
+        super(Opcodes.ASM9);
+        this.name = name;
+        this.descriptor = descriptor;
+        this.riskyInvocations = new ArrayList<>();
+      }
+
+      @Override
+      public void visitInsn(final int opcode) {
+        updateTag(INSN);
+        updateInt(opcode);
+      }
+
+      @Override
+      public void visitIntInsn(final int opcode, final int operand) {
+        updateTag(INT_INSN);
+        updateInt(opcode);
+        updateInt(operand);
+      }
+
+      @Override
+      public void visitVarInsn(final int opcode, final int varIndex) {
+        updateTag(VAR_INSN);
+        updateInt(opcode);
+        updateInt(varIndex);
+      }
+
+      @Override
+      public void visitTypeInsn(final int opcode, final String type) {
+        updateTag(TYPE_INSN);
+        updateInt(opcode);
+        updateInternalName(type);
+      }
+
+      @Override
+      public void visitFieldInsn(
+          final int opcode, final String owner, final String name, final String descriptor) {
+        updateTag(FIELD_INSN);
+        updateInt(opcode);
+        updateInternalName(owner);
+        updateString(name);
+        updateDescriptor(descriptor);
+      }
+
+      @Override
+      public void visitMethodInsn(
+          final int opcode,
+          final String owner,
+          final String name,
+          final String descriptor,
+          final boolean isInterface) {
+        updateTag(METHOD_INSN);
+        updateInt(opcode);
+        updateInt(isInterface ? 1 : 0);
+        MethodInsnNode invocation =
+            new MethodInsnNode(opcode, owner, name, descriptor, isInterface);
+        boolean matched = false;
+        for (InvocationPredicate predicate : riskyBehaviorPredicates) {
+          if (predicate.test(invocation)) {
+            updateTag(MATCHED_BEHAVIOR);
+            updateString(predicate.getBehavior().name());
+            riskyInvocations.add(
+                new RiskyInvocation(
+                    predicate.getBehavior(),
+                    Optional.ofNullable(currentLine),
+                    new MethodInvocation(owner, name, descriptor)));
+            matched = true;
+          }
+        }
+        if (matched) {
+          // this ends up in a finding, so it has to match exactly
+          updateTag(EXACT_NAMES);
+          updateString(owner);
+          updateString(name);
+          updateString(descriptor);
+        } else {
+          updateTag(NORMALIZED_NAMES);
+          updateInternalName(owner);
+          updateString(name);
+          updateDescriptor(descriptor);
+        }
+      }
+
+      @Override
+      public void visitInvokeDynamicInsn(
+          final String name,
+          final String descriptor,
+          final Handle bootstrapMethodHandle,
+          final Object... bootstrapMethodArguments) {
+        updateTag(INVOKE_DYNAMIC_INSN);
+        updateString(name);
+        updateDescriptor(descriptor);
+        updateHandle(bootstrapMethodHandle);
+        updateInt(bootstrapMethodArguments.length);
+        for (Object argument : bootstrapMethodArguments) {
+          updateConstant(argument);
+        }
+      }
+
+      @Override
+      public void visitJumpInsn(final int opcode, final Label label) {
+        updateTag(JUMP_INSN);
+        updateInt(opcode);
+        updateLabel(label);
+      }
+
+      @Override
+      public void visitLabel(final Label label) {
+        updateTag(LABEL);
+        updateLabel(label);
+      }
+
+      @Override
+      public void visitLdcInsn(final Object value) {
+        updateTag(LDC_INSN);
+        updateConstant(value);
+      }
+
+      @Override
+      public void visitIincInsn(final int varIndex, final int increment) {
+        updateTag(IINC_INSN);
+        updateInt(varIndex);
+        updateInt(increment);
+      }
+
+      @Override
+      public void visitTableSwitchInsn(
+          final int min, final int max, final Label dflt, final Label... labels) {
+        updateTag(TABLE_SWITCH_INSN);
+        updateInt(min);
+        updateInt(max);
+        updateLabel(dflt);
+        updateInt(labels.length);
+        for (Label label : labels) {
+          updateLabel(label);
+        }
+      }
+
+      @Override
+      public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+        updateTag(LOOKUP_SWITCH_INSN);
+        updateLabel(dflt);
+        updateInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+          updateInt(keys[i]);
+          updateLabel(labels[i]);
+        }
+      }
+
+      @Override
+      public void visitMultiANewArrayInsn(final String descriptor, final int numDimensions) {
+        updateTag(MULTI_ANEW_ARRAY_INSN);
+        updateDescriptor(descriptor);
+        updateInt(numDimensions);
+      }
+
+      /** Line numbers end up in our findings, so they have to match too. */
+      @Override
+      public void visitLineNumber(final int line, final Label start) {
+        updateTag(LINE_NUMBER);
+        updateInt(line);
+        updateLabel(start);
+        if (firstLine == null) {
+          firstLine = line;
+        }
+        currentLine = line;
+      }
+
+      /**
+       * The containing method's types end up in its findings, so they have to match exactly. Its
+       * first line isn't known until now, so this is also where its risky invocations are kept.
+       */
+      @Override
+      public void visitEnd() {
+        if (!riskyInvocations.isEmpty()) {
+          updateTag(RISKY_METHOD);
+          updateString(descriptor);
+          riskyMethods.add(
+              new RiskyMethod(name, descriptor, Optional.ofNullable(firstLine), riskyInvocations));
+        }
+        updateTag(METHOD_END);
+      }
+
+      /**
+       * Labels are identified by the order we first came across them in, which is the same for
+       * identical code. The reader creates new labels for every method, so we can keep that in
+       * them.
+       */
+      private void updateLabel(final Label label) {
+        if (label.info == null) {
+          label.info = labelCount++;
+        }
+        updateInt((Integer) label.info);
+      }
+    }
+
+    private void updateConstant(final Object value) {
+      if (value instanceof String string) {
+        // shading also rewrites strings that look like class names, so treat them the same way
+        updateTag(STRING_CONSTANT);
+        updateString(simpleName(string.replace('.', '/')));
+      } else if (value instanceof Type type) {
+        updateTag(TYPE_CONSTANT);
+        updateDescriptor(type.getDescriptor());
+      } else if (value instanceof Handle handle) {
+        updateTag(HANDLE_CONSTANT);
+        updateHandle(handle);
+      } else if (value instanceof Integer integer) {
+        updateTag(INTEGER_CONSTANT);
+        updateInt(integer);
+      } else if (value instanceof Long longValue) {
+        updateTag(LONG_CONSTANT);
+        updateLong(longValue);
+      } else if (value instanceof Float floatValue) {
+        updateTag(FLOAT_CONSTANT);
+        updateInt(Float.floatToRawIntBits(floatValue));
+      } else if (value instanceof Double doubleValue) {
+        updateTag(DOUBLE_CONSTANT);
+        updateLong(Double.doubleToRawLongBits(doubleValue));
+      } else if (value instanceof ConstantDynamic constant) {
+        updateTag(DYNAMIC_CONSTANT);
+        updateString(constant.getName());
+        updateDescriptor(constant.getDescriptor());
+        updateHandle(constant.getBootstrapMethod());
+        updateInt(constant.getBootstrapMethodArgumentCount());
+        for (int i = 0; i < constant.getBootstrapMethodArgumentCount(); i++) {
+          updateConstant(constant.getBootstrapMethodArgument(i));
+        }
+      } else {
+        updateTag(OTHER_CONSTANT);
+        updateString(value.getClass().getName());
+        updateString(String.valueOf(value));
+      }
+    }
+
+    private void updateHandle(final Handle handle) {
+      updateInt(handle.getTag());
+      updateInternalName(handle.getOwner());
+      updateString(handle.getName());
+      updateDescriptor(handle.getDesc());
+      updateInt(handle.isInterface() ? 1 : 0);
+    }
+
+    private void updateDescriptor(final String descriptor) {
+      StringBuilder normalized = normalizedDescriptor;
+      normalized.setLength(0);
+      int i = 0;
+      while (i < descriptor.length()) {
+        char c = descriptor.charAt(i);
+        normalized.append(c);
+        if (c == 'L') {
+          // the ';' is appended as we carry on from the end of the name
+          int end = descriptor.indexOf(';', i);
+          normalized.append(descriptor, normalizedNameStart(descriptor, i + 1, end), end);
+          i = end;
+        } else {
+          i++;
+        }
+      }
+      updateString(normalized, 0, normalized.length());
+    }
+
+    private void updateInternalName(final String internalName) {
+      int length = internalName.length();
+      updateString(internalName, normalizedNameStart(internalName, 0, length), length);
+    }
+
+    /** Where the part of the internal name between the given offsets that we hash starts. */
+    private static int normalizedNameStart(final String value, final int from, final int to) {
+      if (isJdkType(value, from)) {
+        return from;
+      }
+      return Math.max(from, value.lastIndexOf('/', to - 1) + 1);
+    }
+
+    private void updateTag(final char tag) {
+      updateByte((byte) tag);
+    }
+
+    private void updateString(final String value) {
+      updateString(value, 0, value.length());
+    }
+
+    private void updateString(final CharSequence value, final int from, final int to) {
+      updateInt(to - from);
+      for (int i = from; i < to; i++) {
+        char c = value.charAt(i);
+        updateByte((byte) (c >>> 8));
+        updateByte((byte) c);
+      }
+    }
+
+    private void updateLong(final long value) {
+      updateInt((int) (value >>> 32));
+      updateInt((int) value);
+    }
+
+    private void updateInt(final int value) {
+      updateByte((byte) (value >>> 24));
+      updateByte((byte) (value >>> 16));
+      updateByte((byte) (value >>> 8));
+      updateByte((byte) value);
+    }
+
+    private void updateByte(final byte value) {
+      if (position == buffer.length) {
+        digest.update(buffer, 0, position);
+        position = 0;
+      }
+      buffer[position++] = value;
+    }
+  }
+
+  private static String simpleName(final String internalName) {
+    return internalName.substring(internalName.lastIndexOf('/') + 1);
+  }
+}
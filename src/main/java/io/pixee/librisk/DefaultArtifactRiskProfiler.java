@@ -4,12 +4,14 @@ import static io.pixee.librisk.MatchingOptions.CASE_INSENSITIVE;
 import static io.pixee.librisk.MatchingOptions.CONTAINS;
 
 import com.google.common.io.ByteStreams;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Objects;
@@ -30,17 +32,22 @@ import org.objectweb.asm.tree.MethodNode;
 final class DefaultArtifactRiskProfiler implements ArtifactRiskProfiler {
 
   private final JarLoader jarLoader;
-  private final Set<InvocationPredicate> riskyBehaviorPredicates;
+  private final RelocatedClassIndex relocatedClassIndex;
 
   /** A set of seams for reading jars. */
   interface JarLoader {
     JarReader load(File file) throws IOException;
+
+    JarReader load(InputStream inputStream) throws IOException;
   }
 
-  interface JarReader {
+  interface JarReader extends Closeable {
     Optional<ClassEntry> nextClassNode() throws IOException;
 
     Set<String> getFailedClasses();
+
+    @Override
+    default void close() throws IOException {}
   }
 
   DefaultArtifactRiskProfiler() {
@@ -49,83 +56,92 @@ final class DefaultArtifactRiskProfiler implements ArtifactRiskProfiler {
 
   DefaultArtifactRiskProfiler(final JarLoader jarLoader) {
     this.jarLoader = Objects.requireNonNull(jarLoader);
-    this.riskyBehaviorPredicates = buildRiskyBehaviorPredicates();
-  }
-
-  private Set<InvocationPredicate> buildRiskyBehaviorPredicates() {
-    return Set.of(
-
-        // base64
-        new TypeAndMethodInvocationPredicate(
-            Behavior.BASE64,
-            "base64",
-            Set.of(CONTAINS, CASE_INSENSITIVE),
-            "decode",
-            Set.of(CONTAINS, CASE_INSENSITIVE)),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.BASE64,
-            "base64",
-            Set.of(CONTAINS, CASE_INSENSITIVE),
-            "encode",
-            Set.of(CONTAINS, CASE_INSENSITIVE)),
-
-        // compilation
-        new MethodOnlyMethodInvocationPredicate(Behavior.COMPILATION, "defineClass"),
-        new MethodOnlyMethodInvocationPredicate(Behavior.COMPILATION, "parseExpression"),
-        new MethodOnlyMethodInvocationPredicate(
-            Behavior.COMPILATION, "evaluateExpression", Set.of()),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.COMPILATION, "java/lang/Instrumentation", "redefineClass"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.COMPILATION, "java/lang/Instrumentation", "retransformClass"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.COMPILATION, "java/lang/Instrumentation", "appendToBootstrap"),
-
-        // deserialization
-        new TypeAndMethodInvocationPredicate(
-            Behavior.DESERIALIZATION, "java/io/ObjectInputStream", "readObject"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.DESERIALIZATION, "java/io/ObjectInputStream", "defaultReadObject"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.DESERIALIZATION, "Kryo", Set.of(CONTAINS), "readObject", Set.of()),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.DESERIALIZATION, "XStream", Set.of(CONTAINS), "fromXML", Set.of()),
-
-        // native operations
-        new TypeAndMethodInvocationPredicate(
-            Behavior.NATIVE_OPERATION, "sun.misc.Unsafe", "getUnsafe"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.NATIVE_OPERATION, "jdk.unsupported.Unsafe", "getUnsafe"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.NATIVE_OPERATION, "jdk.internal.misc.Unsafe", "getUnsafe"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.NATIVE_OPERATION, "java/lang/System", "loadLibrary"),
-
-        // outbound calls
-        new TypeAndMethodInvocationPredicate(
-            Behavior.OUTBOUND_HTTP, "java/net/URLConnection", "open"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.OUTBOUND_HTTP, "HttpClient", Set.of(CONTAINS), "open", Set.of()),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.OUTBOUND_HTTP, "HttpClient", Set.of(CONTAINS), "newBuilder", Set.of()),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.OUTBOUND_HTTP, "OkHttpClient", Set.of(CONTAINS), "newBuilder", Set.of()),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.OUTBOUND_HTTP, "OkHttpClient$Builder", Set.of(CONTAINS), "<init>", Set.of()),
-
-        // security
-        new TypeAndMethodInvocationPredicate(
-            Behavior.SECURITY_OPERATION, "java/lang/System", "setSecurityManager"),
-
-        // system commands
-        new TypeAndMethodInvocationPredicate(Behavior.SYSTEM_COMMANDS, "java/lang/Runtime", "exec"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.SYSTEM_COMMANDS, "java/lang/ProcessBuilder", "command"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.SYSTEM_COMMANDS, "java/lang/ProcessBuilder", "start"),
-        new TypeAndMethodInvocationPredicate(
-            Behavior.SYSTEM_COMMANDS, "java/lang/ProcessBuilder", "<init>"),
-        new MethodOnlyMethodInvocationPredicate(Behavior.ZIP, "zip", Set.of(CONTAINS)));
+    this.relocatedClassIndex = new RelocatedClassIndex();
+  }
+
+  /**
+   * The predicates are stateless, so they're shared by all profilers, and built the first time
+   * anyone profiles something rather than when a profiler is constructed.
+   */
+  static final class RiskyBehaviorPredicates {
+    static final Set<InvocationPredicate> ALL = build();
+
+    private static Set<InvocationPredicate> build() {
+      return Set.of(
+
+          // base64
+          new TypeAndMethodInvocationPredicate(
+              Behavior.BASE64,
+              "base64",
+              Set.of(CONTAINS, CASE_INSENSITIVE),
+              "decode",
+              Set.of(CONTAINS, CASE_INSENSITIVE)),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.BASE64,
+              "base64",
+              Set.of(CONTAINS, CASE_INSENSITIVE),
+              "encode",
+              Set.of(CONTAINS, CASE_INSENSITIVE)),
+
+          // compilation
+          new MethodOnlyMethodInvocationPredicate(Behavior.COMPILATION, "defineClass"),
+          new MethodOnlyMethodInvocationPredicate(Behavior.COMPILATION, "parseExpression"),
+          new MethodOnlyMethodInvocationPredicate(
+              Behavior.COMPILATION, "evaluateExpression", Set.of()),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.COMPILATION, "java/lang/Instrumentation", "redefineClass"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.COMPILATION, "java/lang/Instrumentation", "retransformClass"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.COMPILATION, "java/lang/Instrumentation", "appendToBootstrap"),
+
+          // deserialization
+          new TypeAndMethodInvocationPredicate(
+              Behavior.DESERIALIZATION, "java/io/ObjectInputStream", "readObject"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.DESERIALIZATION, "java/io/ObjectInputStream", "defaultReadObject"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.DESERIALIZATION, "Kryo", Set.of(CONTAINS), "readObject", Set.of()),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.DESERIALIZATION, "XStream", Set.of(CONTAINS), "fromXML", Set.of()),
+
+          // native operations
+          new TypeAndMethodInvocationPredicate(
+              Behavior.NATIVE_OPERATION, "sun.misc.Unsafe", "getUnsafe"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.NATIVE_OPERATION, "jdk.unsupported.Unsafe", "getUnsafe"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.NATIVE_OPERATION, "jdk.internal.misc.Unsafe", "getUnsafe"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.NATIVE_OPERATION, "java/lang/System", "loadLibrary"),
+
+          // outbound calls
+          new TypeAndMethodInvocationPredicate(
+              Behavior.OUTBOUND_HTTP, "java/net/URLConnection", "open"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.OUTBOUND_HTTP, "HttpClient", Set.of(CONTAINS), "open", Set.of()),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.OUTBOUND_HTTP, "HttpClient", Set.of(CONTAINS), "newBuilder", Set.of()),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.OUTBOUND_HTTP, "OkHttpClient", Set.of(CONTAINS), "newBuilder", Set.of()),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.OUTBOUND_HTTP, "OkHttpClient$Builder", Set.of(CONTAINS), "<init>", Set.of()),
+
+          // security
+          new TypeAndMethodInvocationPredicate(
+              Behavior.SECURITY_OPERATION, "java/lang/System", "setSecurityManager"),
+
+          // system commands
+          new TypeAndMethodInvocationPredicate(
+              Behavior.SYSTEM_COMMANDS, "java/lang/Runtime", "exec"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.SYSTEM_COMMANDS, "java/lang/ProcessBuilder", "command"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.SYSTEM_COMMANDS, "java/lang/ProcessBuilder", "start"),
+          new TypeAndMethodInvocationPredicate(
+              Behavior.SYSTEM_COMMANDS, "java/lang/ProcessBuilder", "<init>"),
+          new MethodOnlyMethodInvocationPredicate(Behavior.ZIP, "zip", Set.of(CONTAINS)));
+    }
   }
 
   private static class DefaultJarLoader implements JarLoader {
@@ -133,6 +149,11 @@ final class DefaultArtifactRiskProfiler implements ArtifactRiskProfiler {
     public JarReader load(final File file) throws IOException {
       return new DefaultJarReader(file);
     }
+
+    @Override
+    public JarReader load(final InputStream inputStream) {
+      return new StreamingJarReader(inputStream);
+    }
   }
 
   private static class DefaultJarReader implements JarReader {
@@ -147,12 +168,9 @@ final class DefaultArtifactRiskProfiler implements ArtifactRiskProfiler {
       this.failedClasses = new HashSet<>();
     }
 
-    private ClassNode readClassNode(final InputStream inputStream) throws IOException {
+    private ClassReader readClass(final InputStream inputStream) throws IOException {
       byte[] bytes = Objects.requireNonNull(ByteStreams.toByteArray(inputStream));
-      ClassReader reader = new ClassReader(bytes);
-      ClassNode classNode = new ClassNode();
-      reader.accept(classNode, 0);
-      return classNode;
+      return new ClassReader(bytes);
     }
 
     @Override
@@ -161,8 +179,8 @@ final class DefaultArtifactRiskProfiler implements ArtifactRiskProfiler {
         JarEntry jarEntry = entries.nextElement();
         if (jarEntry.getName().endsWith(".class")) {
           try (InputStream inputStream = jarFile.getInputStream(jarEntry)) {
-            ClassNode classNode = readClassNode(inputStream);
-            return Optional.of(new ClassEntry(classNode, jarEntry.getName()));
+            ClassReader classReader = readClass(inputStream);
+            return Optional.of(new ClassEntry(classReader, jarEntry.getName()));
           }
         }
       }
@@ -173,41 +191,173 @@ final class DefaultArtifactRiskProfiler implements ArtifactRiskProfiler {
     public Set<String> getFailedClasses() {
       return failedClasses;
     }
+
+    @Override
+    public void close() throws IOException {
+      jarFile.close();
+    }
   }
 
-  record ClassEntry(ClassNode classNode, String jarEntryPath) {}
+  /**
+   * A class read from a jar. When it's backed by a {@link ClassReader}, it isn't parsed into a tree
+   * until someone asks for it, since we can often skip that entirely.
+   */
+  static final class ClassEntry {
+
+    private final ClassReader classReader;
+    private final String jarEntryPath;
+    private ClassNode classNode;
+
+    ClassEntry(final ClassNode classNode, final String jarEntryPath) {
+      this.classReader = null;
+      this.classNode = Objects.requireNonNull(classNode);
+      this.jarEntryPath = Objects.requireNonNull(jarEntryPath);
+    }
+
+    ClassEntry(final ClassReader classReader, final String jarEntryPath) {
+      this.classReader = Objects.requireNonNull(classReader);
+      this.jarEntryPath = Objects.requireNonNull(jarEntryPath);
+    }
+
+    Optional<ClassReader> classReader() {
+      return Optional.ofNullable(classReader);
+    }
+
+    ClassNode classNode() {
+      if (classNode == null) {
+        classNode = new ClassNode();
+        classReader.accept(classNode, 0);
+      }
+      return classNode;
+    }
+
+    String jarEntryPath() {
+      return jarEntryPath;
+    }
+  }
 
   @Override
   public ArtifactRiskProfile profile(final File binary) throws IOException {
+    return collect(listener -> profile(binary, listener));
+  }
+
+  @Override
+  public ArtifactRiskProfile profile(final InputStream binary) throws IOException {
+    return collect(listener -> profile(binary, "stream", listener));
+  }
+
+  @Override
+  public void profile(final File binary, final ArtifactRiskListener listener) throws IOException {
+    try (JarReader jarReader = jarLoader.load(binary)) {
+      profile(jarReader, binary.getPath(), listener);
+    }
+  }
+
+  @Override
+  public void profile(
+      final InputStream binary, final String name, final ArtifactRiskListener listener)
+      throws IOException {
+    try (JarReader jarReader = jarLoader.load(binary)) {
+      profile(jarReader, name, listener);
+    }
+  }
+
+  /** Something that reports to a listener, so we can collect its findings into a profile. */
+  private interface Profiling {
+    void run(ArtifactRiskListener listener) throws IOException;
+  }
+
+  private static ArtifactRiskProfile collect(final Profiling profiling) throws IOException {
     Set<BinaryBehaviorFound> riskyBehaviors = new HashSet<>();
-    JarReader jarReader = jarLoader.load(binary);
+    Set<String> failedClasses = new HashSet<>();
+    profiling.run(
+        new ArtifactRiskListener() {
+          @Override
+          public void riskyBehaviorFound(final BinaryBehaviorFound behavior) {
+            riskyBehaviors.add(behavior);
+          }
+
+          @Override
+          public void classFailed(final String className) {
+            failedClasses.add(className);
+          }
+        });
+    return new DefaultArtifactRiskProfile(riskyBehaviors, failedClasses);
+  }
+
+  private void profile(
+      final JarReader jarReader, final String name, final ArtifactRiskListener listener)
+      throws IOException {
+    Objects.requireNonNull(listener);
+    listener.artifactStarted(name);
     Optional<ClassEntry> classEntryRef;
     while ((classEntryRef = jarReader.nextClassNode()).isPresent()) {
-      ClassEntry classEntry = classEntryRef.get();
-      ClassNode classNode = classEntry.classNode();
-      for (MethodNode method : classNode.methods) {
-        List<MethodInsnNode> methodInsns = findAll(method.instructions, MethodInsnNode.class);
-        methodInsns.forEach(
-            invokeMethodInsn -> {
-              MethodDescriptor containingMethodDescriptor = MethodDescriptor.from(method);
-              for (InvocationPredicate predicate : riskyBehaviorPredicates) {
-                if (predicate.test(invokeMethodInsn)) {
-                  LOG.info("Found risky behavior in {}", containingMethodDescriptor);
-                  riskyBehaviors.add(
-                      new BinaryBehaviorFound(
-                          predicate.getBehavior(),
-                          new BinaryLocation(
-                              classEntry.jarEntryPath(),
-                              containingMethodDescriptor,
-                              findLineNumberForInstruction(method.instructions, invokeMethodInsn)),
-                          toMethodInvocation(invokeMethodInsn)));
-                }
-              }
-            });
+      for (BinaryBehaviorFound behavior : findRiskyBehaviors(classEntryRef.get())) {
+        listener.riskyBehaviorFound(behavior);
       }
     }
 
-    return new DefaultArtifactRiskProfile(riskyBehaviors, jarReader.getFailedClasses());
+    for (String failedClass : jarReader.getFailedClasses()) {
+      listener.classFailed(failedClass);
+    }
+    listener.artifactFinished(name);
+  }
+
+  /**
+   * Find the risky behaviors in the given class, reusing what we found in an earlier copy of it
+   * (possibly shaded under another package) if we've seen one. Either way, the class is only read
+   * once, by a streaming pass that fingerprints it and notes its risky invocations.
+   */
+  private List<BinaryBehaviorFound> findRiskyBehaviors(final ClassEntry classEntry) {
+    Optional<ClassReader> classReader = classEntry.classReader();
+    if (classReader.isEmpty()) {
+      return analyze(classEntry);
+    }
+
+    ClassFingerprint.Analysis analysis =
+        ClassFingerprint.analyze(
+            classReader.get(), classEntry.jarEntryPath(), RiskyBehaviorPredicates.ALL);
+    Optional<List<BinaryBehaviorFound>> knownBehaviors =
+        relocatedClassIndex.findings(analysis.fingerprint(), classEntry.jarEntryPath());
+    if (knownBehaviors.isPresent()) {
+      return knownBehaviors.get();
+    }
+
+    List<BinaryBehaviorFound> riskyBehaviors = analysis.riskyBehaviors();
+    for (BinaryBehaviorFound riskyBehavior : riskyBehaviors) {
+      Log.LOG.info("Found risky behavior in {}", riskyBehavior.location().containingMethod());
+    }
+    relocatedClassIndex.remember(analysis.fingerprint(), riskyBehaviors);
+    return riskyBehaviors;
+  }
+
+  /**
+   * Find the risky behaviors in the given class. An invocation can match several predicates for the
+   * same behavior, so they're de-duplicated here, where there are only ever a handful of them.
+   */
+  private List<BinaryBehaviorFound> analyze(final ClassEntry classEntry) {
+    Set<BinaryBehaviorFound> riskyBehaviors = new LinkedHashSet<>();
+    ClassNode classNode = classEntry.classNode();
+    for (MethodNode method : classNode.methods) {
+      List<MethodInsnNode> methodInsns = findAll(method.instructions, MethodInsnNode.class);
+      for (MethodInsnNode invokeMethodInsn : methodInsns) {
+        MethodDescriptor containingMethodDescriptor = MethodDescriptor.from(method);
+        for (InvocationPredicate predicate : RiskyBehaviorPredicates.ALL) {
+          if (predicate.test(invokeMethodInsn)) {
+            Log.LOG.info("Found risky behavior in {}", containingMethodDescriptor);
+            riskyBehaviors.add(
+                new BinaryBehaviorFound(
+                    predicate.getBehavior(),
+                    new BinaryLocation(
+                        classEntry.jarEntryPath(),
+                        containingMethodDescriptor,
+                        findLineNumberForInstruction(method.instructions, invokeMethodInsn)),
+                    toMethodInvocation(invokeMethodInsn)));
+          }
+        }
+      }
+    }
+    return List.copyOf(riskyBehaviors);
   }
 
   private MethodInvocation toMethodInvocation(final MethodInsnNode methodInsn) {
@@ -251,5 +401,8 @@ final class DefaultArtifactRiskProfiler implements ArtifactRiskProfiler {
     return instances;
   }
 
-  private static final Logger LOG = LogManager.getLogger(DefaultArtifactRiskProfiler.class);
+  /** Held separately so that Log4j isn't initialized until we actually have something to log. */
+  private static final class Log {
+    private static final Logger LOG = LogManager.getLogger(DefaultArtifactRiskProfiler.class);
+  }
 }
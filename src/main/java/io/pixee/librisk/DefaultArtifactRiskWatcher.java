@@ -0,0 +1,320 @@
+package io.pixee.librisk;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+final class DefaultArtifactRiskWatcher implements ArtifactRiskWatcher {
+
+  /** How long a jar has to go without changing before we profile it. */
+  static final Duration DEFAULT_QUIET_PERIOD = Duration.ofSeconds(2);
+
+  private final Path directory;
+  private final ArtifactRiskProfiler profiler;
+  private final long quietPeriodNanos;
+  private final WatchService watchService;
+  private final ScheduledExecutorService scanner;
+
+  /** The scanner's threads, so a subscriber closing us from one doesn't wait on itself. */
+  private final Set<Thread> scannerThreads;
+
+  /** When we last heard each artifact had changed, for those we haven't profiled since. */
+  private final Map<Path, Long> lastChanged;
+
+  /** The one check waiting to run for each artifact, however many times it changes meanwhile. */
+  private final Map<Path, ScheduledFuture<?>> pendingChecks;
+
+  /** The artifacts being profiled right now, so we never profile the same one concurrently. */
+  private final Set<Path> scanning;
+
+  /** What each artifact looked like when we profiled it, so we can skip unchanged ones. */
+  private final Map<Path, FileState> scannedStates;
+
+  private final Map<Path, ArtifactRiskProfile> profiles;
+  private final List<Subscriber> subscribers;
+  private volatile boolean closed;
+
+  private record FileState(FileTime lastModified, long size) {}
+
+  DefaultArtifactRiskWatcher(
+      final Path directory,
+      final ArtifactRiskProfiler profiler,
+      final List<Subscriber> subscribers)
+      throws IOException {
+    this(
+        directory,
+        profiler,
+        subscribers,
+        DEFAULT_QUIET_PERIOD,
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+  }
+
+  /** Everything has to be set up before the first scan is scheduled at the end of this. */
+  DefaultArtifactRiskWatcher(
+      final Path directory,
+      final ArtifactRiskProfiler profiler,
+      final List<Subscriber> subscribers,
+      final Duration quietPeriod,
+      final int scanThreads)
+      throws IOException {
+    this.directory = Objects.requireNonNull(directory);
+    this.profiler = Objects.requireNonNull(profiler);
+    this.quietPeriodNanos = quietPeriod.toNanos();
+    this.lastChanged = new ConcurrentHashMap<>();
+    this.pendingChecks = new ConcurrentHashMap<>();
+    this.scanning = ConcurrentHashMap.newKeySet();
+    this.scannedStates = new ConcurrentHashMap<>();
+    this.profiles = new ConcurrentHashMap<>();
+    this.subscribers = new CopyOnWriteArrayList<>(subscribers);
+    this.scannerThreads = ConcurrentHashMap.newKeySet();
+    ThreadFactory scannerThreadFactory = daemonThreadFactory("librisk-watcher-scanner");
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(
+            scanThreads,
+            runnable -> {
+              Thread thread = scannerThreadFactory.newThread(runnable);
+              scannerThreads.add(thread);
+              return thread;
+            });
+    // once we're closed, only the scans already running get to finish
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    this.scanner = executor;
+
+    // start watching before we list the directory, so nothing slips through in between
+    WatchService watchService = null;
+    try {
+      watchService = directory.getFileSystem().newWatchService();
+      directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+      scheduleAll();
+    } catch (IOException | RuntimeException | Error e) {
+      // nobody can close us if we fail here, so let go of everything now
+      scanner.shutdownNow();
+      if (watchService != null) {
+        try {
+          watchService.close();
+        } catch (IOException closeFailure) {
+          e.addSuppressed(closeFailure);
+        }
+      }
+      throw e;
+    }
+    this.watchService = watchService;
+
+    daemonThreadFactory("librisk-watcher").newThread(this::watch).start();
+  }
+
+  @Override
+  public Map<Path, ArtifactRiskProfile> profiles() {
+    return Collections.unmodifiableMap(profiles);
+  }
+
+  @Override
+  public void subscribe(final Subscriber subscriber) {
+    subscribers.add(Objects.requireNonNull(subscriber));
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    watchService.close();
+    // we don't interrupt the scans in progress, since that would close any channel they're reading
+    scanner.shutdown();
+    if (scannerThreads.contains(Thread.currentThread())) {
+      // a subscriber is closing us, so waiting would deadlock; other scans see we're closed anyway
+      return;
+    }
+    try {
+      scanner.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for profiling to finish");
+    }
+  }
+
+  /** Blocks on the watch service, so we use no CPU at all while nothing is changing. */
+  private void watch() {
+    try {
+      while (!closed) {
+        WatchKey key = watchService.take();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW) {
+            LOG.warn("Missed some changes in {}, checking everything again", directory);
+            try {
+              scheduleAll();
+            } catch (IOException e) {
+              LOG.error("Couldn't list {}", directory, e);
+            }
+          } else {
+            Path artifact = directory.resolve((Path) event.context());
+            if (isArtifact(artifact)) {
+              schedule(artifact);
+            }
+          }
+        }
+        if (!key.reset()) {
+          LOG.warn("Can't watch {} anymore, it's no longer accessible", directory);
+          return;
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      // we were closed
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Check every artifact we know of or can see, in case we missed something about it. */
+  private void scheduleAll() throws IOException {
+    Set<Path> artifacts = new HashSet<>(profiles.keySet());
+    try (Stream<Path> paths = Files.list(directory)) {
+      paths.filter(DefaultArtifactRiskWatcher::isArtifact).forEach(artifacts::add);
+    }
+    artifacts.forEach(this::schedule);
+  }
+
+  /** Note that the artifact changed, and make sure it gets checked once the quiet period is up. */
+  private void schedule(final Path artifact) {
+    lastChanged.put(artifact, System.nanoTime());
+    scheduleCheck(artifact, quietPeriodNanos);
+  }
+
+  /** Unless a check on the artifact is already pending, in which case that one will do. */
+  private void scheduleCheck(final Path artifact, final long delayNanos) {
+    pendingChecks.computeIfAbsent(
+        artifact,
+        key -> {
+          try {
+            return scanner.schedule(() -> check(key), delayNanos, TimeUnit.NANOSECONDS);
+          } catch (RejectedExecutionException e) {
+            // we were closed
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Profile the artifact if it's been quiet long enough, or check again once it will have been.
+   * This check stops being the pending one before it looks, so a change it misses gets a new one.
+   */
+  private void check(final Path artifact) {
+    pendingChecks.remove(artifact);
+    Long changed = lastChanged.get(artifact);
+    if (changed == null) {
+      return;
+    }
+    long quietNanos = System.nanoTime() - changed;
+    if (quietNanos < quietPeriodNanos) {
+      scheduleCheck(artifact, quietPeriodNanos - quietNanos);
+      return;
+    }
+    if (!scanning.add(artifact)) {
+      // still profiling an older version, so come back once that's likely done
+      scheduleCheck(artifact, quietPeriodNanos);
+      return;
+    }
+    try {
+      if (lastChanged.remove(artifact, changed)) {
+        scan(artifact);
+      }
+    } finally {
+      scanning.remove(artifact);
+    }
+  }
+
+  private void scan(final Path artifact) {
+    FileState state;
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(artifact, BasicFileAttributes.class);
+      state = new FileState(attributes.lastModifiedTime(), attributes.size());
+    } catch (NoSuchFileException e) {
+      scannedStates.remove(artifact);
+      if (profiles.remove(artifact) != null) {
+        notifySubscribers(artifact, Optional.empty());
+      }
+      return;
+    } catch (IOException e) {
+      LOG.warn("Couldn't check {}, will try again when it changes", artifact, e);
+      return;
+    }
+
+    if (state.equals(scannedStates.get(artifact))) {
+      return;
+    }
+
+    ArtifactRiskProfile profile;
+    try {
+      profile = profiler.profile(artifact.toFile());
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Couldn't profile {}, will try again when it changes", artifact, e);
+      return;
+    }
+
+    if (closed) {
+      return;
+    }
+    scannedStates.put(artifact, state);
+    ArtifactRiskProfile previous = profiles.put(artifact, profile);
+    if (!profile.equals(previous)) {
+      notifySubscribers(artifact, Optional.of(profile));
+    }
+  }
+
+  private void notifySubscribers(final Path artifact, final Optional<ArtifactRiskProfile> profile) {
+    for (Subscriber subscriber : subscribers) {
+      if (closed) {
+        return;
+      }
+      try {
+        subscriber.profileChanged(artifact, profile);
+      } catch (RuntimeException e) {
+        LOG.error("Subscriber failed handling change to {}", artifact, e);
+      }
+    }
+  }
+
+  private static boolean isArtifact(final Path path) {
+    return path.getFileName().toString().endsWith(".jar");
+  }
+
+  private static ThreadFactory daemonThreadFactory(final String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static final Logger LOG = LogManager.getLogger(DefaultArtifactRiskWatcher.class);
+}
@@ -0,0 +1,83 @@
+package io.pixee.librisk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes each finding as a standalone JSON object on its own line, tagged with the artifact it came
+ * from, so the output can be consumed (or concatenated) line-by-line.
+ */
+final class JsonLinesRiskReportWriter extends StreamingRiskReportWriter {
+
+  private String artifact;
+
+  JsonLinesRiskReportWriter(final OutputStream out) {
+    super(out);
+  }
+
+  @Override
+  public void artifactStarted(final String artifact) {
+    this.artifact = artifact;
+  }
+
+  @Override
+  public void riskyBehaviorFound(final BinaryBehaviorFound behavior) throws IOException {
+    BinaryLocation location = behavior.location();
+    MethodDescriptor method = location.containingMethod();
+    MethodInvocation invocation = behavior.methodInvocation();
+
+    out.write('{');
+    writeArtifact();
+    writeName("behavior", artifact == null);
+    writeString(behavior.behavior().name());
+    writeName("jarEntryPath", false);
+    writeString(location.jarEntryPath());
+
+    writeName("method", false);
+    out.write('{');
+    writeName("name", true);
+    writeString(method.name());
+    writeName("returnType", false);
+    writeString(method.returnType());
+    writeName("argumentTypes", false);
+    writeStringArray(method.argumentTypes());
+    if (method.firstLine().isPresent()) {
+      writeName("firstLine", false);
+      out.write(String.valueOf(method.firstLine().get()));
+    }
+    out.write('}');
+
+    if (location.lineNumber().isPresent()) {
+      writeName("lineNumber", false);
+      out.write(String.valueOf(location.lineNumber().get()));
+    }
+
+    writeName("invocation", false);
+    out.write('{');
+    writeName("owner", true);
+    writeString(invocation.owner());
+    writeName("name", false);
+    writeString(invocation.name());
+    writeName("desc", false);
+    writeString(invocation.desc());
+    out.write('}');
+
+    out.write("}\n");
+  }
+
+  @Override
+  public void classFailed(final String className) throws IOException {
+    out.write('{');
+    writeArtifact();
+    writeName("failedClass", artifact == null);
+    writeString(className);
+    out.write("}\n");
+  }
+
+  private void writeArtifact() throws IOException {
+    if (artifact != null) {
+      writeName("artifact", true);
+      writeString(artifact);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package io.pixee.librisk;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A command line entrypoint meant for short-lived invocations, like pre-commit and CI hooks, where
+ * JVM startup can easily cost more than the scan itself. It streams a report for each of the given
+ * artifacts to stdout (or a file), and does as little as possible before the first artifact is
+ * opened.
+ *
+ * <p>Startup is fastest with an AppCDS archive, which has to be created on the machine that runs
+ * the jar, since the JVM only uses it with the same JDK and the jar at the same path, unchanged
+ * since. {@code --create-cds-archive} creates one, after which the fastest way to run is:
+ *
+ * <pre>
+ * java -XX:SharedArchiveFile=librisk.jsa -Xlog:cds=off -Xlog:cds+dynamic=off \
+ *   -XX:TieredStopAtLevel=1 -jar librisk.jar [options] jar...
+ * </pre>
+ *
+ * <p>Turning off the {@code cds} logging matters: once the jar is replaced, the JVM otherwise warns
+ * that it can't use the archive on every run, and does so on stdout, in the middle of the report.
+ */
+public final class LibriskCli {
+
+  static final int EXIT_OK = 0;
+  static final int EXIT_FAILED = 1;
+  static final int EXIT_USAGE = 2;
+
+  private static final String USAGE =
+      "usage: librisk [--format sarif|jsonl] [--output <file>] [--timings] <jar>...\n"
+          + "       librisk --create-cds-archive <file>";
+
+  private static final List<String> OPTIONS_WITH_VALUES =
+      List.of("--format", "--output", "--create-cds-archive");
+
+  private LibriskCli() {}
+
+  public static void main(final String[] args) {
+    // The API falls back to this anyway when there's no implementation on the classpath, but only
+    // after searching for one and complaining on stderr.
+    if (System.getProperty("log4j2.loggerContextFactory") == null) {
+      System.setProperty(
+          "log4j2.loggerContextFactory",
+          "org.apache.logging.log4j.simple.SimpleLoggerContextFactory");
+    }
+    System.exit(run(args, new FileOutputStream(FileDescriptor.out), System.err));
+  }
+
+  static int run(final String[] args, final OutputStream stdout, final PrintStream stderr) {
+    Instant mainStartedAt = Instant.now();
+    long mainStarted = System.nanoTime();
+    String format = "sarif";
+    Path output = null;
+    boolean timings = false;
+    Path cdsArchive = null;
+    List<File> binaries = new ArrayList<>();
+
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (OPTIONS_WITH_VALUES.contains(arg) && i + 1 == args.length) {
+        stderr.println(arg + " requires a value");
+        stderr.println(USAGE);
+        return EXIT_USAGE;
+      }
+      switch (arg) {
+        case "--format" -> format = args[++i];
+        case "--output" -> output = Path.of(args[++i]);
+        case "--timings" -> timings = true;
+        case "--create-cds-archive" -> cdsArchive = Path.of(args[++i]);
+        case "--help", "-h" -> {
+          stderr.println(USAGE);
+          return EXIT_OK;
+        }
+        default -> {
+          if (arg.startsWith("-")) {
+            stderr.println("unknown option: " + arg);
+            stderr.println(USAGE);
+            return EXIT_USAGE;
+          }
+          binaries.add(new File(arg));
+        }
+      }
+    }
+
+    if (cdsArchive != null) {
+      if (!binaries.isEmpty()) {
+        stderr.println("--create-cds-archive doesn't take any jars");
+        stderr.println(USAGE);
+        return EXIT_USAGE;
+      }
+      return createCdsArchive(cdsArchive, stderr);
+    }
+    if (binaries.isEmpty()) {
+      stderr.println(USAGE);
+      return EXIT_USAGE;
+    }
+    if (!"sarif".equals(format) && !"jsonl".equals(format)) {
+      stderr.println("unknown format: " + format);
+      stderr.println(USAGE);
+      return EXIT_USAGE;
+    }
+
+    int exitCode = EXIT_OK;
+    long scanStarted = System.nanoTime();
+    try (OutputStream out = output != null ? Files.newOutputStream(output) : stdout;
+        RiskReportWriter writer = openWriter(format, out)) {
+      ArtifactRiskProfiler profiler = ArtifactRiskProfiler.createDefault();
+      for (File binary : binaries) {
+        try {
+          profiler.profile(binary, writer);
+        } catch (IOException | RuntimeException e) {
+          // a malformed class makes ASM throw, which shouldn't stop us from scanning the rest
+          stderr.println("couldn't profile " + binary + ": " + e);
+          exitCode = EXIT_FAILED;
+        }
+      }
+    } catch (IOException e) {
+      stderr.println("couldn't write report: " + e.getMessage());
+      return EXIT_FAILED;
+    }
+
+    if (timings) {
+      printTimings(stderr, mainStartedAt, mainStarted, scanStarted, System.nanoTime());
+    }
+    return exitCode;
+  }
+
+  /**
+   * Create an AppCDS archive for the jar we're running from, by running it once more with {@code
+   * -XX:ArchiveClassesAtExit}, profiling itself, since that loads everything a real run does.
+   */
+  private static int createCdsArchive(final Path archive, final PrintStream stderr) {
+    Optional<Path> jar = runningJar();
+    if (jar.isEmpty()) {
+      stderr.println("--create-cds-archive only works when running from the librisk jar");
+      return EXIT_USAGE;
+    }
+
+    Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+    ProcessBuilder training =
+        new ProcessBuilder(
+                java.toString(),
+                "-XX:ArchiveClassesAtExit=" + archive.toAbsolutePath(),
+                "-jar",
+                jar.get().toString(),
+                "--format",
+                "jsonl",
+                jar.get().toString())
+            // the report, and the JVM's notes about classes it couldn't archive, all go to stdout
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+    try {
+      Process process = training.start();
+      byte[] errors = process.getErrorStream().readAllBytes();
+      if (process.waitFor() != EXIT_OK || !Files.isRegularFile(archive)) {
+        stderr.println("couldn't create CDS archive " + archive);
+        stderr.writeBytes(errors);
+        return EXIT_FAILED;
+      }
+    } catch (IOException e) {
+      stderr.println("couldn't create CDS archive " + archive + ": " + e.getMessage());
+      return EXIT_FAILED;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return EXIT_FAILED;
+    }
+
+    stderr.println("created " + archive + ", which this JDK will use for " + jar.get() + " with:");
+    stderr.println(
+        "  java -XX:SharedArchiveFile="
+            + archive.toAbsolutePath()
+            + " -Xlog:cds=off -Xlog:cds+dynamic=off -XX:TieredStopAtLevel=1 -jar "
+            + jar.get()
+            + " ...");
+    return EXIT_OK;
+  }
+
+  /** The jar we're running from, if we are, rather than from a directory of classes. */
+  private static Optional<Path> runningJar() {
+    CodeSource codeSource = LibriskCli.class.getProtectionDomain().getCodeSource();
+    if (codeSource == null) {
+      return Optional.empty();
+    }
+    try {
+      Path location = Path.of(codeSource.getLocation().toURI()).toAbsolutePath();
+      return Files.isRegularFile(location) ? Optional.of(location) : Optional.empty();
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static RiskReportWriter openWriter(final String format, final OutputStream out) {
+    return "sarif".equals(format) ? RiskReportWriter.sarif(out) : RiskReportWriter.jsonLines(out);
+  }
+
+  /**
+   * Report where the time went. The JVM startup figure is what the AppCDS archive and lazy
+   * initialization are there to keep down, and is the number to watch for regressions.
+   */
+  private static void printTimings(
+      final PrintStream stderr,
+      final Instant mainStartedAt,
+      final long mainStarted,
+      final long scanStarted,
+      final long scanFinished) {
+    ProcessHandle.current()
+        .info()
+        .startInstant()
+        .ifPresent(
+            jvmStarted ->
+                stderr.println(
+                    "startup: " + Duration.between(jvmStarted, mainStartedAt).toMillis() + " ms"));
+    stderr.println("setup: " + Duration.ofNanos(scanStarted - mainStarted).toMillis() + " ms");
+    stderr.println("scan: " + Duration.ofNanos(scanFinished - scanStarted).toMillis() + " ms");
+  }
+}
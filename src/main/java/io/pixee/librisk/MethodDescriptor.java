@@ -14,11 +14,15 @@ record MethodDescriptor(
     String name, String returnType, List<String> argumentTypes, Optional<Integer> firstLine) {
 
   static MethodDescriptor from(final MethodNode method) {
-    String returnTypeName = Type.getReturnType(method.desc).getClassName();
-    Type[] argumentTypes = Type.getArgumentTypes(method.desc);
+    return of(method.name, method.desc, findFirstLine(method.instructions));
+  }
+
+  static MethodDescriptor of(
+      final String name, final String descriptor, final Optional<Integer> firstLine) {
+    String returnTypeName = Type.getReturnType(descriptor).getClassName();
+    Type[] argumentTypes = Type.getArgumentTypes(descriptor);
     List<String> argumentTypeNames = Arrays.stream(argumentTypes).map(Type::getClassName).toList();
-    return new MethodDescriptor(
-        method.name, returnTypeName, argumentTypeNames, findFirstLine(method.instructions));
+    return new MethodDescriptor(name, returnTypeName, argumentTypeNames, firstLine);
   }
 
   private static Optional<Integer> findFirstLine(final InsnList insnList) {
@@ -0,0 +1,55 @@
+package io.pixee.librisk;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what we found in each class we've analyzed, keyed by its {@link ClassFingerprint}, so
+ * that copies of the same class in other jars don't have to be parsed and analyzed again. This is
+ * mostly for libraries like Guava, Jackson or Netty, which get shaded into lots of other jars under
+ * relocated packages. Since classes with the same fingerprint have the same findings, all we have
+ * to change when handing them back is the jar entry they were found in.
+ *
+ * <p>To keep memory in check over long, fleet-wide scans, we stop remembering new classes once
+ * we've seen {@link #MAX_CLASSES} of them.
+ */
+final class RelocatedClassIndex {
+
+  static final int MAX_CLASSES = 100_000;
+
+  private final Map<ClassFingerprint, List<BinaryBehaviorFound>> analyzedClasses;
+
+  RelocatedClassIndex() {
+    this.analyzedClasses = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Return the findings of a previously analyzed class with the same fingerprint, as they'd have
+   * been found in the given jar entry, or empty if we haven't seen one.
+   */
+  Optional<List<BinaryBehaviorFound>> findings(
+      final ClassFingerprint fingerprint, final String jarEntryPath) {
+    List<BinaryBehaviorFound> findings = analyzedClasses.get(fingerprint);
+    if (findings == null) {
+      return Optional.empty();
+    }
+    return Optional.of(findings.stream().map(finding -> movedTo(finding, jarEntryPath)).toList());
+  }
+
+  void remember(final ClassFingerprint fingerprint, final List<BinaryBehaviorFound> findings) {
+    if (analyzedClasses.size() < MAX_CLASSES) {
+      analyzedClasses.putIfAbsent(fingerprint, List.copyOf(findings));
+    }
+  }
+
+  private static BinaryBehaviorFound movedTo(
+      final BinaryBehaviorFound finding, final String jarEntryPath) {
+    BinaryLocation location = finding.location();
+    return new BinaryBehaviorFound(
+        finding.behavior(),
+        new BinaryLocation(jarEntryPath, location.containingMethod(), location.lineNumber()),
+        finding.methodInvocation());
+  }
+}
@@ -0,0 +1,33 @@
+package io.pixee.librisk;
+
+import java.io.Closeable;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A {@link ArtifactRiskListener} that serializes findings to an output as they're reported, using a
+ * fixed-size buffer regardless of how many findings or artifacts pass through it. The same writer
+ * can be handed to {@link ArtifactRiskProfiler#profile(java.io.File, ArtifactRiskListener)} for
+ * any number of artifacts, and must be closed afterwards to complete the report.
+ */
+public interface RiskReportWriter extends ArtifactRiskListener, Closeable {
+
+  /** Writes one JSON object per finding, each on its own line. */
+  static RiskReportWriter jsonLines(final OutputStream out) {
+    return new JsonLinesRiskReportWriter(out);
+  }
+
+  static RiskReportWriter jsonLines(final WritableByteChannel channel) {
+    return jsonLines(Channels.newOutputStream(channel));
+  }
+
+  /** Writes a single SARIF 2.1.0 log, with one run containing all the findings. */
+  static RiskReportWriter sarif(final OutputStream out) {
+    return new SarifRiskReportWriter(out);
+  }
+
+  static RiskReportWriter sarif(final WritableByteChannel channel) {
+    return sarif(Channels.newOutputStream(channel));
+  }
+}
@@ -0,0 +1,134 @@
+package io.pixee.librisk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Writes a SARIF 2.1.0 log with a single run. The log header (including the rules, one per {@link
+ * Behavior}) is written up front, results are appended as they're found, and the enclosing
+ * structure is only closed out when the writer is closed.
+ */
+final class SarifRiskReportWriter extends StreamingRiskReportWriter {
+
+  /** The rule used to report classes we couldn't analyze, alongside one rule per behavior. */
+  static final String FAILED_CLASS_RULE_ID = "FAILED_CLASS";
+
+  private String artifact;
+  private boolean headerWritten;
+  private boolean firstResult = true;
+
+  SarifRiskReportWriter(final OutputStream out) {
+    super(out);
+  }
+
+  @Override
+  public void artifactStarted(final String artifact) {
+    this.artifact = artifact;
+  }
+
+  @Override
+  public void riskyBehaviorFound(final BinaryBehaviorFound behavior) throws IOException {
+    BinaryLocation location = behavior.location();
+    MethodDescriptor method = location.containingMethod();
+    MethodInvocation invocation = behavior.methodInvocation();
+
+    startResult(behavior.behavior().name(), "warning");
+    writeString(
+        "Invokes "
+            + invocation.owner()
+            + "."
+            + invocation.name()
+            + invocation.desc()
+            + " from "
+            + method.name());
+    out.write("},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":");
+    writeString(toUri(location.jarEntryPath()));
+    out.write('}');
+    if (location.lineNumber().isPresent()) {
+      out.write(",\"region\":{\"startLine\":");
+      out.write(String.valueOf(location.lineNumber().get()));
+      out.write('}');
+    }
+    out.write("},\"logicalLocations\":[{\"kind\":\"function\",\"fullyQualifiedName\":");
+    writeString(toClassName(location.jarEntryPath()) + "." + method.name());
+    out.write("}]}]}");
+  }
+
+  @Override
+  public void classFailed(final String className) throws IOException {
+    startResult(FAILED_CLASS_RULE_ID, "note");
+    writeString("Could not analyze " + className);
+    out.write("},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":");
+    writeString(toUri(className));
+    out.write("}}}]}");
+  }
+
+  @Override
+  protected void finish() throws IOException {
+    writeHeaderIfNeeded();
+    out.write("]}]}\n");
+  }
+
+  /** Write everything up to the start of the result's message text. */
+  private void startResult(final String ruleId, final String level) throws IOException {
+    writeHeaderIfNeeded();
+    if (!firstResult) {
+      out.write(',');
+    }
+    firstResult = false;
+    out.write("{\"ruleId\":");
+    writeString(ruleId);
+    out.write(",\"level\":");
+    writeString(level);
+    out.write(",\"message\":{\"text\":");
+  }
+
+  private void writeHeaderIfNeeded() throws IOException {
+    if (headerWritten) {
+      return;
+    }
+    headerWritten = true;
+    out.write(
+        "{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\","
+            + "\"runs\":[{\"tool\":{\"driver\":{\"name\":\"librisk\","
+            + "\"informationUri\":\"https://github.com/pixee/librisk\",\"rules\":[");
+    for (Behavior behavior : Behavior.values()) {
+      writeRule(behavior.name(), behavior.name().toLowerCase().replace('_', ' '));
+      out.write(',');
+    }
+    writeRule(FAILED_CLASS_RULE_ID, "class could not be analyzed");
+    out.write("]}},\"results\":[");
+  }
+
+  private void writeRule(final String id, final String description) throws IOException {
+    out.write("{\"id\":");
+    writeString(id);
+    out.write(",\"shortDescription\":{\"text\":");
+    writeString(description);
+    out.write("}}");
+  }
+
+  /**
+   * Build a URI reference for a jar entry, relative to wherever the artifact was scanned from, like
+   * {@code target/acme.jar!/com/acme/Runner.class}.
+   */
+  private String toUri(final String jarEntryPath) {
+    String path = artifact != null ? artifact + "!/" + jarEntryPath : jarEntryPath;
+    try {
+      return new URI(null, null, path.replace(File.separatorChar, '/'), null).toASCIIString();
+    } catch (URISyntaxException e) {
+      return path;
+    }
+  }
+
+  private static String toClassName(final String jarEntryPath) {
+    String path =
+        jarEntryPath.endsWith(".class")
+            ? jarEntryPath.substring(0, jarEntryPath.length() - ".class".length())
+            : jarEntryPath;
+    return path.replace('/', '.');
+  }
+}
@@ -0,0 +1,167 @@
+package io.pixee.librisk;
+
+import io.pixee.librisk.DefaultArtifactRiskProfiler.ClassEntry;
+import io.pixee.librisk.DefaultArtifactRiskProfiler.JarReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Reads the classes out of a jar in a single forward pass over its local file headers, so it works
+ * on sources that can't seek, like uploads or downloads that haven't been written to disk.
+ *
+ * <p>Entries are inflated on a background thread and handed over through a small queue, so
+ * inflating the next class overlaps with analyzing the current one. Only a handful of classes are
+ * ever held in memory at once, no matter how big the jar is.
+ *
+ * <p>Anything in front of the first entry is skipped, like the launcher script of a fully
+ * executable jar. Readers that go by the central directory never notice it, but {@link
+ * ZipInputStream} would take it to mean the jar has no entries at all.
+ */
+final class StreamingJarReader implements JarReader {
+
+  /** How many inflated classes can be waiting to be analyzed. */
+  private static final int QUEUE_CAPACITY = 2;
+
+  private static final long JOIN_POLL_MILLIS = 10;
+
+  /** What every local file header starts with, "PK\3\4". */
+  private static final byte[] LOCAL_HEADER_SIGNATURE = {'P', 'K', 3, 4};
+
+  private final BlockingQueue<Optional<ClassEntry>> classEntries;
+  private final Set<String> failedClasses;
+  private final Thread inflater;
+  private volatile Throwable failure;
+  private volatile boolean closed;
+  private boolean finished;
+
+  StreamingJarReader(final InputStream inputStream) {
+    Objects.requireNonNull(inputStream);
+    this.classEntries = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    this.failedClasses = new HashSet<>();
+    this.inflater = new Thread(() -> inflate(inputStream), "librisk-jar-inflater");
+    inflater.setDaemon(true);
+    inflater.start();
+  }
+
+  private void inflate(final InputStream inputStream) {
+    try {
+      // we don't close this, since that would close the caller's stream
+      ZipInputStream zip = new ZipInputStream(skipToFirstEntry(inputStream));
+      ZipEntry entry;
+      while (!closed && (entry = zip.getNextEntry()) != null) {
+        if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+          ClassReader classReader = new ClassReader(zip.readAllBytes());
+          classEntries.put(Optional.of(new ClassEntry(classReader, entry.getName())));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable t) {
+      // including errors, like running out of memory on a huge entry, so the reader hears about it
+      failure = t;
+    } finally {
+      if (!closed) {
+        try {
+          classEntries.put(Optional.empty());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  private static InputStream skipToFirstEntry(final InputStream inputStream) throws IOException {
+    PushbackInputStream in =
+        new PushbackInputStream(
+            new BufferedInputStream(inputStream), LOCAL_HEADER_SIGNATURE.length);
+    long read = 0;
+    int matched = 0;
+    int b;
+    while ((b = in.read()) != -1) {
+      read++;
+      if (b == LOCAL_HEADER_SIGNATURE[matched]) {
+        matched++;
+      } else {
+        // no proper prefix of the signature ends with another prefix of it, so only a 'P' restarts
+        matched = b == LOCAL_HEADER_SIGNATURE[0] ? 1 : 0;
+      }
+      if (matched == LOCAL_HEADER_SIGNATURE.length) {
+        in.unread(LOCAL_HEADER_SIGNATURE);
+        return in;
+      }
+    }
+    if (read > 0) {
+      throw new IOException("not a jar, found no entries in the " + read + " bytes read");
+    }
+    return in;
+  }
+
+  @Override
+  public Optional<ClassEntry> nextClassNode() throws IOException {
+    if (finished) {
+      return Optional.empty();
+    }
+
+    Optional<ClassEntry> classEntry;
+    try {
+      classEntry = classEntries.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for next class");
+    }
+
+    if (classEntry.isEmpty()) {
+      finished = true;
+      if (failure instanceof IOException ioException) {
+        throw ioException;
+      } else if (failure instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      } else if (failure instanceof Error error) {
+        throw error;
+      } else if (failure != null) {
+        throw new IOException("couldn't read jar", failure);
+      }
+    }
+    return classEntry;
+  }
+
+  @Override
+  public Set<String> getFailedClasses() {
+    return failedClasses;
+  }
+
+  /**
+   * Stop inflating if we gave up early, and wait until the inflater is done with the caller's
+   * stream, so they're free to reuse or close it once we return. Draining the queue unblocks the
+   * inflater so it can notice and exit after the entry it's reading; we don't interrupt it, since
+   * that would close the caller's channel if it's interruptible.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    boolean interrupted = false;
+    while (inflater.isAlive()) {
+      classEntries.clear();
+      try {
+        inflater.join(JOIN_POLL_MILLIS);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
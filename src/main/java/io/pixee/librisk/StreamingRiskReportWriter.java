@@ -0,0 +1,94 @@
+package io.pixee.librisk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The shared plumbing for our report writers. Everything is written straight into a fixed-size
+ * buffer, which is drained to the underlying stream whenever it fills up and after each artifact.
+ */
+abstract class StreamingRiskReportWriter implements RiskReportWriter {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  protected final Writer out;
+  private boolean closed;
+
+  StreamingRiskReportWriter(final OutputStream out) {
+    this.out =
+        new BufferedWriter(
+            new OutputStreamWriter(Objects.requireNonNull(out), StandardCharsets.UTF_8),
+            BUFFER_SIZE);
+  }
+
+  /** Write the given value as a quoted and escaped JSON string. */
+  protected void writeString(final String value) throws IOException {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> out.write("\\\"");
+        case '\\' -> out.write("\\\\");
+        case '\n' -> out.write("\\n");
+        case '\r' -> out.write("\\r");
+        case '\t' -> out.write("\\t");
+        default -> {
+          if (c < 0x20) {
+            out.write(String.format("\\u%04x", (int) c));
+          } else {
+            out.write(c);
+          }
+        }
+      }
+    }
+    out.write('"');
+  }
+
+  protected void writeStringArray(final List<String> values) throws IOException {
+    out.write('[');
+    for (int i = 0; i < values.size(); i++) {
+      if (i > 0) {
+        out.write(',');
+      }
+      writeString(values.get(i));
+    }
+    out.write(']');
+  }
+
+  /** Write a {@code "name":} prefix, preceded by a comma unless it's the first in its object. */
+  protected void writeName(final String name, final boolean first) throws IOException {
+    if (!first) {
+      out.write(',');
+    }
+    writeString(name);
+    out.write(':');
+  }
+
+  @Override
+  public void artifactFinished(final String artifact) throws IOException {
+    out.flush();
+  }
+
+  /** Write whatever has to follow the last finding, right before the stream is closed. */
+  protected void finish() throws IOException {}
+
+  /** Only the first call does anything, as with any other {@link java.io.Closeable}. */
+  @Override
+  public final void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      finish();
+    } finally {
+      out.close();
+    }
+  }
+}
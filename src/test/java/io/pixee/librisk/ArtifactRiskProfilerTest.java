@@ -3,6 +3,7 @@ package io.pixee.librisk;
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -10,8 +11,16 @@ import static org.mockito.Mockito.when;
 import io.pixee.librisk.DefaultArtifactRiskProfiler.ClassEntry;
 import io.pixee.librisk.DefaultArtifactRiskProfiler.JarLoader;
 import io.pixee.librisk.DefaultArtifactRiskProfiler.JarReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -23,6 +32,8 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 
 final class ArtifactRiskProfilerTest {
@@ -48,6 +59,93 @@ final class ArtifactRiskProfilerTest {
     assertThat(profile.failedClasses(), hasItems());
   }
 
+  @Test
+  void it_scans_jar_from_stream() throws IOException {
+    File jacksonJar = new File("target/jackson-core.jar");
+
+    ArtifactRiskProfile fromFile = ArtifactRiskProfiler.createDefault().profile(jacksonJar);
+    // a separate profiler, so nothing is reused from the first scan
+    ArtifactRiskProfile fromStream;
+    try (InputStream inputStream = new FileInputStream(jacksonJar)) {
+      fromStream = ArtifactRiskProfiler.createDefault().profile(inputStream);
+    }
+
+    assertThat(fromStream.riskyBehaviors(), is(fromFile.riskyBehaviors()));
+    assertThat(fromStream.failedClasses(), is(fromFile.failedClasses()));
+  }
+
+  @Test
+  void it_scans_jar_with_launcher_script_from_stream() throws IOException {
+    File springWebJar = new File("target/spring-web.jar");
+    ByteArrayOutputStream executableJar = new ByteArrayOutputStream();
+    executableJar.writeBytes(
+        "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.US_ASCII));
+    executableJar.writeBytes(Files.readAllBytes(springWebJar.toPath()));
+
+    ArtifactRiskProfile fromFile = ArtifactRiskProfiler.createDefault().profile(springWebJar);
+    ArtifactRiskProfile fromStream =
+        ArtifactRiskProfiler.createDefault()
+            .profile(new ByteArrayInputStream(executableJar.toByteArray()));
+
+    assertThat(fromStream.riskyBehaviors().isEmpty(), is(false));
+    assertThat(fromStream.riskyBehaviors(), is(fromFile.riskyBehaviors()));
+  }
+
+  @Test
+  void it_rejects_stream_that_isnt_a_jar() {
+    InputStream notAJar =
+        new ByteArrayInputStream("just some text".getBytes(StandardCharsets.US_ASCII));
+
+    assertThrows(IOException.class, () -> ArtifactRiskProfiler.createDefault().profile(notAJar));
+  }
+
+  @Test
+  void it_rethrows_errors_from_stream() throws IOException {
+    try (InputStream inputStream = new FileInputStream("target/jackson-core.jar")) {
+      InputStream failingStream =
+          new FilterInputStream(inputStream) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+              throw new StackOverflowError("deeply nested stream");
+            }
+          };
+
+      assertThrows(
+          StackOverflowError.class,
+          () -> ArtifactRiskProfiler.createDefault().profile(failingStream));
+    }
+  }
+
+  @Test
+  void it_reports_invocation_matching_several_predicates_once() throws IOException {
+    // this matches both the HttpClient and OkHttpClient predicates
+    ClassNode classNode = new ClassNode();
+    classNode.visit(
+        Opcodes.V17, Opcodes.ACC_PUBLIC, "com/acme/Client", null, "java/lang/Object", null);
+    MethodVisitor method =
+        classNode.visitMethod(
+            Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "connect", "()V", null, null);
+    method.visitCode();
+    method.visitMethodInsn(
+        Opcodes.INVOKESTATIC,
+        "okhttp3/OkHttpClient",
+        "newBuilder",
+        "()Lokhttp3/OkHttpClient$Builder;",
+        false);
+    method.visitInsn(Opcodes.POP);
+    method.visitInsn(Opcodes.RETURN);
+    method.visitEnd();
+    classNode.visitEnd();
+    ClassEntry entry = new ClassEntry(classNode, "com/acme/Client.class");
+    when(jarReader.nextClassNode()).thenReturn(Optional.of(entry), Optional.empty());
+
+    List<BinaryBehaviorFound> found = new ArrayList<>();
+    new DefaultArtifactRiskProfiler(jarLoader).profile(new File("client.jar"), found::add);
+
+    assertThat(found.size(), is(1));
+    assertThat(found.get(0).behavior(), is(Behavior.OUTBOUND_HTTP));
+  }
+
   private static Stream<Arguments> systemCommandsArguments() {
     return Stream.of(
         Arguments.of(
@@ -147,6 +245,29 @@ final class ArtifactRiskProfilerTest {
     assertThat(riskyBehaviors, hasItems(expectedBehaviors.toArray(new BinaryBehaviorFound[0])));
   }
 
+  /** Jars are read without building a tree, so make sure that finds exactly the same. */
+  @ParameterizedTest
+  @MethodSource("systemCommandsArguments")
+  void it_analyzes_system_commands_in_one_pass(
+      final Class<?> testClass, final List<BinaryBehaviorFound> expectedBehaviors)
+      throws IOException {
+    String jarEntryPath = testClass.getName().replace('.', '/') + ".class";
+    File classFile = new File("target/test-classes/" + jarEntryPath);
+    ClassEntry treeEntry = toClassEntry(classFile, jarEntryPath);
+    ClassReader reader = new ClassReader(FileUtils.readFileToByteArray(classFile));
+    ClassEntry streamedEntry = new ClassEntry(reader, jarEntryPath);
+    when(jarReader.nextClassNode())
+        .thenReturn(
+            Optional.of(treeEntry), Optional.empty(), Optional.of(streamedEntry), Optional.empty());
+
+    ArtifactRiskProfile fromTree = new DefaultArtifactRiskProfiler(jarLoader).profile(classFile);
+    ArtifactRiskProfile streamed = new DefaultArtifactRiskProfiler(jarLoader).profile(classFile);
+
+    assertThat(streamed.riskyBehaviors(), is(fromTree.riskyBehaviors()));
+    assertThat(
+        streamed.riskyBehaviors(), hasItems(expectedBehaviors.toArray(new BinaryBehaviorFound[0])));
+  }
+
   ClassEntry toClassEntry(final File classFile, final String jarEntryPath) throws IOException {
     byte[] bytes = FileUtils.readFileToByteArray(classFile);
     ClassReader reader = new ClassReader(bytes);
@@ -0,0 +1,106 @@
+package io.pixee.librisk;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class ArtifactRiskWatcherTest {
+
+  private static final ArtifactRiskProfile PROFILE =
+      new DefaultArtifactRiskProfile(Set.of(), Set.of("com/acme/Broken.class"));
+
+  @TempDir Path directory;
+
+  private ArtifactRiskProfiler profiler;
+  private BlockingQueue<Map.Entry<Path, Optional<ArtifactRiskProfile>>> changes;
+
+  @BeforeEach
+  void setup() throws IOException {
+    profiler = mock(ArtifactRiskProfiler.class);
+    when(profiler.profile(any(File.class))).thenReturn(PROFILE);
+    changes = new LinkedBlockingQueue<>();
+  }
+
+  @Test
+  void it_profiles_existing_new_and_removed_jars() throws Exception {
+    Path existing = Files.write(directory.resolve("existing.jar"), new byte[] {1});
+
+    try (ArtifactRiskWatcher watcher = watch()) {
+      assertThat(nextChange(), is(Map.entry(existing, Optional.of(PROFILE))));
+
+      Path added = directory.resolve("added.jar");
+      for (int i = 1; i <= 5; i++) {
+        Files.write(added, new byte[i]);
+      }
+      Files.write(directory.resolve("notes.txt"), new byte[] {1});
+      assertThat(nextChange(), is(Map.entry(added, Optional.of(PROFILE))));
+      assertThat(watcher.profiles(), is(Map.of(existing, PROFILE, added, PROFILE)));
+
+      Files.delete(existing);
+      assertThat(nextChange(), is(Map.entry(existing, Optional.empty())));
+      assertThat(watcher.profiles(), is(Map.of(added, PROFILE)));
+    }
+
+    // the burst of writes to added.jar only got profiled once, and notes.txt never did
+    verify(profiler, times(2)).profile(any(File.class));
+  }
+
+  @Test
+  void it_finishes_profiling_in_progress_before_close_returns() throws Exception {
+    CountDownLatch profiling = new CountDownLatch(1);
+    AtomicBoolean profiled = new AtomicBoolean();
+    when(profiler.profile(any(File.class)))
+        .thenAnswer(
+            invocation -> {
+              profiling.countDown();
+              Thread.sleep(500);
+              profiled.set(true);
+              return PROFILE;
+            });
+    Files.write(directory.resolve("existing.jar"), new byte[] {1});
+
+    ArtifactRiskWatcher watcher = watch();
+    assertThat(profiling.await(10, TimeUnit.SECONDS), is(true));
+    watcher.close();
+
+    // the scan was allowed to finish, but nobody hears about it after we closed
+    assertThat(profiled.get(), is(true));
+    assertThat(changes.poll(200, TimeUnit.MILLISECONDS), is(nullValue()));
+  }
+
+  private ArtifactRiskWatcher watch() throws IOException {
+    ArtifactRiskWatcher.Subscriber subscriber =
+        (artifact, profile) -> changes.add(Map.entry(artifact, profile));
+    return new DefaultArtifactRiskWatcher(
+        directory, profiler, List.of(subscriber), Duration.ofMillis(200), 1);
+  }
+
+  private Map.Entry<Path, Optional<ArtifactRiskProfile>> nextChange() throws InterruptedException {
+    Map.Entry<Path, Optional<ArtifactRiskProfile>> change = changes.poll(10, TimeUnit.SECONDS);
+    assertThat("timed out waiting for change", change != null, is(true));
+    return change;
+  }
+}
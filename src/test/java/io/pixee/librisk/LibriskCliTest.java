@@ -0,0 +1,107 @@
+package io.pixee.librisk;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class LibriskCliTest {
+
+  @TempDir Path directory;
+
+  private ByteArrayOutputStream stdout;
+  private ByteArrayOutputStream stderr;
+
+  @BeforeEach
+  void setup() {
+    stdout = new ByteArrayOutputStream();
+    stderr = new ByteArrayOutputStream();
+  }
+
+  @Test
+  void it_requires_artifacts() {
+    assertThat(run(), is(LibriskCli.EXIT_USAGE));
+    assertThat(stderr(), startsWith("usage:"));
+  }
+
+  @Test
+  void it_rejects_unknown_formats() {
+    assertThat(run("--format", "xml", "target/jackson-core.jar"), is(LibriskCli.EXIT_USAGE));
+    assertThat(stderr(), startsWith("unknown format: xml"));
+  }
+
+  @Test
+  void it_streams_jsonl_report() {
+    assertThat(run("--format", "jsonl", "target/spring-web.jar"), is(LibriskCli.EXIT_OK));
+    List<String> lines = stdout().lines().toList();
+    assertThat(lines.isEmpty(), is(false));
+    for (String line : lines) {
+      assertThat(line, startsWith("{\"artifact\":\"target/spring-web.jar\","));
+    }
+    assertThat(
+        stdout(),
+        containsString(
+            "\"behavior\":\"DESERIALIZATION\",\"jarEntryPath\":\"org/springframework/"));
+  }
+
+  @Test
+  void it_reports_malformed_artifacts_but_scans_the_rest() throws IOException {
+    Path malformed = directory.resolve("malformed.jar");
+    try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(malformed))) {
+      jar.putNextEntry(new JarEntry("com/acme/Malformed.class"));
+      jar.write(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0});
+      jar.closeEntry();
+    }
+
+    assertThat(
+        run("--format", "jsonl", malformed.toString(), "target/spring-web.jar"),
+        is(LibriskCli.EXIT_FAILED));
+    assertThat(stderr(), containsString("couldn't profile " + malformed));
+    assertThat(stdout(), containsString("{\"artifact\":\"target/spring-web.jar\","));
+  }
+
+  @Test
+  void it_reports_unreadable_artifacts_but_completes_report() {
+    assertThat(
+        run("--timings", "target/does-not-exist.jar", "target/jackson-core.jar"),
+        is(LibriskCli.EXIT_FAILED));
+    assertThat(stderr(), containsString("couldn't profile target/does-not-exist.jar"));
+    assertThat(stderr(), containsString("scan: "));
+    assertThat(stdout(), endsWith("]}]}\n"));
+  }
+
+  @Test
+  void it_only_creates_cds_archive_for_its_own_jar() {
+    // the tests run from a directory of classes, which the JVM can't archive for
+    Path archive = directory.resolve("librisk.jsa");
+    assertThat(run("--create-cds-archive", archive.toString()), is(LibriskCli.EXIT_USAGE));
+    assertThat(stderr(), startsWith("--create-cds-archive only works when running from"));
+    assertThat(Files.exists(archive), is(false));
+  }
+
+  private int run(final String... args) {
+    return LibriskCli.run(args, stdout, new PrintStream(stderr, true, StandardCharsets.UTF_8));
+  }
+
+  private String stdout() {
+    return stdout.toString(StandardCharsets.UTF_8);
+  }
+
+  private String stderr() {
+    return stderr.toString(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,224 @@
+package io.pixee.librisk;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import io.pixee.librisk.DefaultArtifactRiskProfiler.RiskyBehaviorPredicates;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+final class RelocatedClassIndexTest {
+
+  @TempDir Path directory;
+
+  @Test
+  void it_moves_findings_to_new_jar_entry() {
+    BinaryBehaviorFound finding =
+        new BinaryBehaviorFound(
+            Behavior.DESERIALIZATION,
+            new BinaryLocation(
+                "com/fasterxml/jackson/core/JsonFactory.class",
+                new MethodDescriptor("read", "java.lang.Object", List.of(), Optional.of(10)),
+                Optional.of(12)),
+            new MethodInvocation(
+                "java/io/ObjectInputStream", "readObject", "()Ljava/lang/Object;"));
+    RelocatedClassIndex index = new RelocatedClassIndex();
+    ClassFingerprint fingerprint = new ClassFingerprint(1, 2);
+    index.remember(fingerprint, List.of(finding));
+
+    assertThat(
+        index.findings(fingerprint, "com/foo/shaded/jackson/core/JsonFactory.class"),
+        is(
+            Optional.of(
+                List.of(
+                    new BinaryBehaviorFound(
+                        Behavior.DESERIALIZATION,
+                        new BinaryLocation(
+                            "com/foo/shaded/jackson/core/JsonFactory.class",
+                            finding.location().containingMethod(),
+                            Optional.of(12)),
+                        finding.methodInvocation())))));
+    assertThat(
+        index.findings(new ClassFingerprint(3, 4), "com/acme/Foo.class"), is(Optional.empty()));
+  }
+
+  @Test
+  void it_fingerprints_relocated_copy_the_same() {
+    assertThat(
+        fingerprint(generateClass("", "Runner", Optional.empty())),
+        is(fingerprint(generateClass("shaded/", "Runner", Optional.empty()))));
+  }
+
+  @Test
+  void it_fingerprints_risky_calls_on_relocated_types_differently() {
+    assertThat(
+        fingerprint(generateClass("", "Client", Optional.of("okhttp3/OkHttpClient"))),
+        not(
+            fingerprint(
+                generateClass("shaded/", "Client", Optional.of("shaded/okhttp3/OkHttpClient")))));
+  }
+
+  @Test
+  void it_fingerprints_different_instructions_differently() {
+    assertThat(
+        fingerprint(generateClass(run -> run.visitIincInsn(Opcodes.POP, Opcodes.POP))),
+        not(
+            fingerprint(
+                generateClass(
+                    run -> {
+                      run.visitInsn(Opcodes.POP);
+                      run.visitInsn(Opcodes.POP);
+                    }))));
+  }
+
+  @Test
+  void it_fingerprints_strings_containing_nul_unambiguously() {
+    assertThat(
+        fingerprint(
+            generateClass(
+                run -> {
+                  run.visitLdcInsn("x");
+                  run.visitLdcInsn("y");
+                })),
+        not(fingerprint(generateClass(run -> run.visitLdcInsn("x\u0000\u0000Ly")))));
+  }
+
+  @Test
+  void it_reports_the_same_for_shaded_copy_as_fresh_scan() throws IOException {
+    File lib =
+        writeJar(
+            "lib.jar",
+            Map.of(
+                "com/x/Runner.class",
+                generateClass("", "Runner", Optional.empty()),
+                "com/x/Client.class",
+                generateClass("", "Client", Optional.of("okhttp3/OkHttpClient"))));
+    File host =
+        writeJar(
+            "host.jar",
+            Map.of(
+                "shaded/com/x/Runner.class",
+                generateClass("shaded/", "Runner", Optional.empty()),
+                "shaded/com/x/Client.class",
+                generateClass("shaded/", "Client", Optional.of("shaded/okhttp3/OkHttpClient"))));
+
+    ArtifactRiskProfiler warmedUp = ArtifactRiskProfiler.createDefault();
+    warmedUp.profile(lib);
+    ArtifactRiskProfile reused = warmedUp.profile(host);
+    ArtifactRiskProfile fresh = ArtifactRiskProfiler.createDefault().profile(host);
+
+    assertThat(reused.riskyBehaviors(), is(fresh.riskyBehaviors()));
+    assertThat(
+        fresh.riskyBehaviors().stream().map(BinaryBehaviorFound::methodInvocation).toList(),
+        hasItem(
+            new MethodInvocation(
+                "shaded/okhttp3/OkHttpClient",
+                "newBuilder",
+                "()Lshaded/okhttp3/OkHttpClient$Builder;")));
+  }
+
+  private static ClassFingerprint fingerprint(final byte[] bytes) {
+    return ClassFingerprint.analyze(
+            new ClassReader(bytes), "com/x/Generated.class", RiskyBehaviorPredicates.ALL)
+        .fingerprint();
+  }
+
+  private File writeJar(final String name, final Map<String, byte[]> classes) throws IOException {
+    Path jar = directory.resolve(name);
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+        out.putNextEntry(new JarEntry(entry.getKey()));
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+    return jar.toFile();
+  }
+
+  /** Generate a class with a single method, with the given body. */
+  private static byte[] generateClass(final Consumer<MethodVisitor> body) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "com/x/Runner", null, "java/lang/Object", null);
+    MethodVisitor run = writer.visitMethod(Opcodes.ACC_STATIC, "run", "()V", null, null);
+    run.visitCode();
+    body.accept(run);
+    run.visitInsn(Opcodes.RETURN);
+    run.visitMaxs(0, 0);
+    run.visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  /**
+   * Generate a class like one from a library that's been shaded under the given prefix. It uses
+   * another class from the same library, runs a system command, and optionally builds an HTTP
+   * client of the given type.
+   */
+  private static byte[] generateClass(
+      final String prefix, final String simpleName, final Optional<String> httpClientType) {
+    String bar = prefix + "com/x/Bar";
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(
+        Opcodes.V17,
+        Opcodes.ACC_PUBLIC,
+        prefix + "com/x/" + simpleName,
+        null,
+        "java/lang/Object",
+        null);
+    writer.visitField(Opcodes.ACC_PRIVATE, "bar", "L" + bar + ";", null, null).visitEnd();
+
+    MethodVisitor helper =
+        writer.visitMethod(Opcodes.ACC_STATIC, "helper", "(L" + bar + ";)V", null, null);
+    helper.visitCode();
+    helper.visitVarInsn(Opcodes.ALOAD, 0);
+    helper.visitMethodInsn(Opcodes.INVOKEVIRTUAL, bar, "help", "()V", false);
+    helper.visitInsn(Opcodes.RETURN);
+    helper.visitMaxs(0, 0);
+    helper.visitEnd();
+
+    MethodVisitor run = writer.visitMethod(Opcodes.ACC_STATIC, "run", "()V", null, null);
+    run.visitCode();
+    Label start = new Label();
+    run.visitLabel(start);
+    run.visitLineNumber(7, start);
+    run.visitMethodInsn(
+        Opcodes.INVOKESTATIC, "java/lang/Runtime", "getRuntime", "()Ljava/lang/Runtime;", false);
+    run.visitLdcInsn("ls");
+    run.visitMethodInsn(
+        Opcodes.INVOKEVIRTUAL,
+        "java/lang/Runtime",
+        "exec",
+        "(Ljava/lang/String;)Ljava/lang/Process;",
+        false);
+    run.visitInsn(Opcodes.POP);
+    httpClientType.ifPresent(
+        type -> {
+          run.visitMethodInsn(
+              Opcodes.INVOKESTATIC, type, "newBuilder", "()L" + type + "$Builder;", false);
+          run.visitInsn(Opcodes.POP);
+        });
+    run.visitInsn(Opcodes.RETURN);
+    run.visitMaxs(0, 0);
+    run.visitEnd();
+
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+}
@@ -0,0 +1,113 @@
+package io.pixee.librisk;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+final class RiskReportWriterTest {
+
+  private static final BinaryBehaviorFound RUNTIME_EXEC =
+      new BinaryBehaviorFound(
+          Behavior.SYSTEM_COMMANDS,
+          new BinaryLocation(
+              "com/acme/Runner.class",
+              new MethodDescriptor("run", "void", List.of("java.lang.String"), Optional.of(7)),
+              Optional.of(9)),
+          new MethodInvocation(
+              "java/lang/Runtime", "exec", "(Ljava/lang/String;)Ljava/lang/Process;"));
+
+  @Test
+  void it_writes_one_json_line_per_finding() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RiskReportWriter writer = RiskReportWriter.jsonLines(out)) {
+      writer.artifactStarted("acme.jar");
+      writer.riskyBehaviorFound(RUNTIME_EXEC);
+      writer.classFailed("com/acme/Broken \"quoted\".class");
+      writer.artifactFinished("acme.jar");
+    }
+
+    String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+    assertThat(lines.length, is(2));
+    assertThat(
+        lines[0],
+        is(
+            "{\"artifact\":\"acme.jar\",\"behavior\":\"SYSTEM_COMMANDS\","
+                + "\"jarEntryPath\":\"com/acme/Runner.class\","
+                + "\"method\":{\"name\":\"run\",\"returnType\":\"void\","
+                + "\"argumentTypes\":[\"java.lang.String\"],\"firstLine\":7},"
+                + "\"lineNumber\":9,"
+                + "\"invocation\":{\"owner\":\"java/lang/Runtime\",\"name\":\"exec\","
+                + "\"desc\":\"(Ljava/lang/String;)Ljava/lang/Process;\"}}"));
+    assertThat(
+        lines[1],
+        is(
+            "{\"artifact\":\"acme.jar\","
+                + "\"failedClass\":\"com/acme/Broken \\\"quoted\\\".class\"}"));
+  }
+
+  @Test
+  void it_writes_sarif_log() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RiskReportWriter writer = RiskReportWriter.sarif(out)) {
+      writer.riskyBehaviorFound(RUNTIME_EXEC);
+      writer.riskyBehaviorFound(RUNTIME_EXEC);
+    }
+
+    String sarif = out.toString(StandardCharsets.UTF_8);
+    assertThat(sarif, startsWith("{\"$schema\""));
+    assertThat(sarif, containsString("\"rules\":[{\"id\":\"BASE64\""));
+    assertThat(
+        sarif,
+        containsString(
+            "{\"ruleId\":\"SYSTEM_COMMANDS\",\"level\":\"warning\",\"message\":{\"text\":"
+                + "\"Invokes java/lang/Runtime.exec(Ljava/lang/String;)Ljava/lang/Process; from"
+                + " run\"},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":"
+                + "{\"uri\":\"com/acme/Runner.class\"},\"region\":{\"startLine\":9}},"
+                + "\"logicalLocations\":[{\"kind\":\"function\","
+                + "\"fullyQualifiedName\":\"com.acme.Runner.run\"}]}]},{\"ruleId\""));
+    assertThat(sarif, endsWith("}]}]}\n"));
+  }
+
+  @Test
+  void it_locates_sarif_results_within_artifact() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RiskReportWriter writer = RiskReportWriter.sarif(out)) {
+      writer.artifactStarted("build/my libs/acme.jar");
+      writer.riskyBehaviorFound(RUNTIME_EXEC);
+      writer.artifactFinished("build/my libs/acme.jar");
+    }
+
+    assertThat(
+        out.toString(StandardCharsets.UTF_8),
+        containsString("{\"uri\":\"build/my%20libs/acme.jar!/com/acme/Runner.class\"}"));
+  }
+
+  @Test
+  void it_writes_empty_sarif_log() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RiskReportWriter.sarif(out).close();
+
+    assertThat(out.toString(StandardCharsets.UTF_8), endsWith("\"results\":[]}]}\n"));
+  }
+
+  @Test
+  void it_ignores_closing_twice() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RiskReportWriter writer = RiskReportWriter.sarif(out);
+    writer.close();
+    String log = out.toString(StandardCharsets.UTF_8);
+
+    writer.close();
+
+    assertThat(out.toString(StandardCharsets.UTF_8), is(log));
+  }
+}